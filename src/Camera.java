@@ -0,0 +1,95 @@
+import java.awt.Graphics2D;
+
+public class Camera {
+    // World position at the center of the view
+    float x, y;
+    float zoom = 1.0f;
+    float minZoom, maxZoom = 4.0f;
+    int viewWidth, viewHeight;
+    int worldWidth, worldHeight;
+
+    public Camera(int viewWidth, int viewHeight, int worldWidth, int worldHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        updateMinZoom();
+        reset();
+    }
+
+    // Never zoom out further than it takes to see the whole world
+    private void updateMinZoom() {
+        minZoom = Math.min(1.0f, Math.min((float) viewWidth / worldWidth, (float) viewHeight / worldHeight));
+    }
+
+    // Follows a resized view, keeping the same world point at its center
+    void resize(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        updateMinZoom();
+        zoom = Math.max(minZoom, Math.min(maxZoom, zoom));
+        clamp();
+    }
+
+    void reset() {
+        zoom = 1.0f;
+        x = viewWidth / 2.0f;
+        y = viewHeight / 2.0f;
+        clamp();
+    }
+
+    // Pan by a distance given in screen pixels
+    void pan(float dx, float dy) {
+        x += dx / zoom;
+        y += dy / zoom;
+        clamp();
+    }
+
+    // Zoom while keeping the world point under (sx, sy) fixed on screen
+    void zoomAt(float factor, float sx, float sy) {
+        float wx = screenToWorldX(sx);
+        float wy = screenToWorldY(sy);
+        zoom = Math.max(minZoom, Math.min(maxZoom, zoom * factor));
+        x = wx - (sx - viewWidth / 2.0f) / zoom;
+        y = wy - (sy - viewHeight / 2.0f) / zoom;
+        clamp();
+    }
+
+    void clamp() {
+        float halfW = viewWidth / (2.0f * zoom);
+        float halfH = viewHeight / (2.0f * zoom);
+        // Center the world on an axis where it is smaller than the view
+        x = (halfW * 2 >= worldWidth) ? worldWidth / 2.0f : Math.max(halfW, Math.min(worldWidth - halfW, x));
+        y = (halfH * 2 >= worldHeight) ? worldHeight / 2.0f : Math.max(halfH, Math.min(worldHeight - halfH, y));
+    }
+
+    float left() {
+        return x - viewWidth / (2.0f * zoom);
+    }
+
+    float top() {
+        return y - viewHeight / (2.0f * zoom);
+    }
+
+    float right() {
+        return x + viewWidth / (2.0f * zoom);
+    }
+
+    float bottom() {
+        return y + viewHeight / (2.0f * zoom);
+    }
+
+    float screenToWorldX(float sx) {
+        return left() + sx / zoom;
+    }
+
+    float screenToWorldY(float sy) {
+        return top() + sy / zoom;
+    }
+
+    // Maps world coordinates to screen coordinates for everything drawn after
+    void apply(Graphics2D g) {
+        g.scale(zoom, zoom);
+        g.translate(-left(), -top());
+    }
+}
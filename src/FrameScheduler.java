@@ -0,0 +1,139 @@
+import java.util.concurrent.locks.LockSupport;
+
+// Fixed-timestep scheduler for the main loop. Real time, scaled by
+// timeScale, is fed into an accumulator and drained in fixed sim steps, so
+// speeding up runs more steps rather than bigger ones. When the machine
+// cannot keep up, sub-steps beyond the frame budget are dropped (the sim
+// slows down instead of spiralling) and repaints are skipped while the
+// previous one is still pending.
+public class FrameScheduler {
+    static final double MIN_TIME_SCALE = 0.125;
+    static final double MAX_TIME_SCALE = 32.0;
+
+    final float fixedDt;
+    final long frameNanos;
+    // Share of a frame the sim may use before remaining sub-steps are shed
+    final double stepBudget = 0.75;
+    // Longest real time accounted for in one frame, e.g. after a stall
+    final double maxFrameTime = 0.25;
+
+    volatile double timeScale = 5.0; // Run 5x faster
+    volatile boolean paused;
+
+    private double accumulator;
+    private long lastTime;
+    private long frameStart;
+    private long nextFrame;
+    private boolean paintPending;
+
+    // Rates measured over one second windows
+    private int framesPainted;
+    private int stepsRun;
+    private long windowStart;
+    volatile float simHz, frameHz;
+    volatile int shedSteps, shedFrames;
+    private int shedStepsWindow, shedFramesWindow;
+
+    public FrameScheduler(float fixedDt, int targetFps) {
+        this.fixedDt = fixedDt;
+        this.frameNanos = 1_000_000_000L / targetFps;
+        lastTime = System.nanoTime();
+        nextFrame = lastTime + frameNanos;
+        windowStart = lastTime;
+    }
+
+    // Starts a frame and returns how many fixed steps are owed
+    int beginFrame() {
+        frameStart = System.nanoTime();
+        double elapsed = Math.min(maxFrameTime, (frameStart - lastTime) / 1e9);
+        lastTime = frameStart;
+        if (!paused)
+            accumulator += elapsed * timeScale;
+        return (int) (accumulator / fixedDt);
+    }
+
+    // True once the sim has used up its share of this frame
+    boolean overBudget() {
+        return System.nanoTime() - frameStart > frameNanos * stepBudget;
+    }
+
+    // Records the steps actually run; time owed beyond them is dropped
+    void endSteps(int owed, int done) {
+        accumulator -= done * (double) fixedDt;
+        if (done < owed) {
+            accumulator = Math.min(accumulator, fixedDt);
+            shedStepsWindow += owed - done;
+        }
+        stepsRun += done;
+    }
+
+    // Call from the loop thread before repaint(); false if the last frame
+    // has not been painted yet
+    synchronized boolean shouldRender() {
+        if (paintPending) {
+            shedFramesWindow++;
+            return false;
+        }
+        paintPending = true;
+        return true;
+    }
+
+    // Call from paintComponent
+    synchronized void framePainted() {
+        paintPending = false;
+        framesPainted++;
+    }
+
+    // Sleeps until the next frame deadline: parks for most of the wait, then
+    // spins briefly for accuracy
+    void waitForNextFrame() {
+        long now = System.nanoTime();
+        if (now - nextFrame > frameNanos) {
+            // More than a frame late: resync instead of rushing to catch up
+            nextFrame = now + frameNanos;
+        } else {
+            while (true) {
+                long remaining = nextFrame - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                if (remaining > 1_000_000)
+                    LockSupport.parkNanos(remaining - 1_000_000);
+                else
+                    Thread.onSpinWait();
+            }
+            nextFrame += frameNanos;
+        }
+        updateRates();
+    }
+
+    private void updateRates() {
+        long now = System.nanoTime();
+        long window = now - windowStart;
+        if (window < 1_000_000_000L)
+            return;
+        double seconds = window / 1e9;
+        simHz = (float) (stepsRun / seconds);
+        synchronized (this) {
+            frameHz = (float) (framesPainted / seconds);
+            framesPainted = 0;
+        }
+        shedSteps = shedStepsWindow;
+        shedFrames = shedFramesWindow;
+        stepsRun = 0;
+        shedStepsWindow = 0;
+        shedFramesWindow = 0;
+        windowStart = now;
+    }
+
+    void faster() {
+        timeScale = Math.min(MAX_TIME_SCALE, timeScale * 2);
+    }
+
+    void slower() {
+        timeScale = Math.max(MIN_TIME_SCALE, timeScale / 2);
+    }
+
+    void togglePause() {
+        paused = !paused;
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// In-process transport for shards running on threads of one JVM. Messages
+// are still encoded so that shards never share mutable entities.
+public class LocalTransport implements Transport {
+    // A shard thread that died would otherwise leave its neighbours waiting
+    // forever
+    static final long RECEIVE_TIMEOUT_MS = 30_000;
+
+    private final int id;
+    private final List<BlockingQueue<byte[]>> inboxes;
+    private long bytesSent;
+
+    private LocalTransport(int id, List<BlockingQueue<byte[]>> inboxes) {
+        this.id = id;
+        this.inboxes = inboxes;
+    }
+
+    // One connected endpoint per shard
+    public static LocalTransport[] create(int shardCount) {
+        List<BlockingQueue<byte[]>> inboxes = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++)
+            inboxes.add(new LinkedBlockingQueue<>());
+        LocalTransport[] endpoints = new LocalTransport[shardCount];
+        for (int i = 0; i < shardCount; i++)
+            endpoints[i] = new LocalTransport(i, inboxes);
+        return endpoints;
+    }
+
+    @Override
+    public void send(int toShard, ShardMessage message) throws IOException {
+        byte[] data = message.encode();
+        bytesSent += data.length;
+        inboxes.get(toShard).add(data);
+    }
+
+    @Override
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public ShardMessage receive() throws IOException, InterruptedException {
+        byte[] data = inboxes.get(id).poll(RECEIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (data == null)
+            throw new IOException("Timed out waiting for a neighbouring shard");
+        return ShardMessage.decode(data);
+    }
+
+    @Override
+    public void close() {
+    }
+}
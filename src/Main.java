@@ -1,69 +1,194 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.*;
 
 public class Main extends JPanel {
     Simulation sim;
     Renderer renderer;
     IoT iot;
+    Camera camera;
+    FrameScheduler clock;
 
-    public Main() {
+    public Main(int worldWidth, int worldHeight) {
         int w = 800;
         int h = 600;
-        sim = new Simulation(w, h);
+        sim = new Simulation(worldWidth, worldHeight);
         renderer = new Renderer(w, h);
         iot = new IoT();
+        camera = new Camera(w, h, worldWidth, worldHeight);
+        clock = new FrameScheduler(1.0f / 60.0f, 60);
 
         setPreferredSize(new Dimension(w, h));
         setBackground(Color.BLACK);
+        setFocusable(true);
+        installControls();
+    }
+
+    // Mouse: drag to pan, wheel to zoom at the cursor.
+    // Keys: arrows/WASD to pan, +/- to zoom, 0 or Home to reset,
+    // [ and ] to halve/double the time scale, P to pause.
+    private void installControls() {
+        MouseAdapter mouse = new MouseAdapter() {
+            int lastX, lastY;
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                lastX = e.getX();
+                lastY = e.getY();
+                requestFocusInWindow();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                camera.pan(lastX - e.getX(), lastY - e.getY());
+                lastX = e.getX();
+                lastY = e.getY();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                camera.zoomAt((float) Math.pow(1.1, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+
+        // Camera and render buffer follow the window size; a minimized
+        // window reports an empty size, which is ignored
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (getWidth() > 0 && getHeight() > 0) {
+                    camera.resize(getWidth(), getHeight());
+                    renderer.resize(getWidth(), getHeight());
+                }
+            }
+        });
+
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                float step = 40.0f;
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_LEFT:
+                    case KeyEvent.VK_A:
+                        camera.pan(-step, 0);
+                        break;
+                    case KeyEvent.VK_RIGHT:
+                    case KeyEvent.VK_D:
+                        camera.pan(step, 0);
+                        break;
+                    case KeyEvent.VK_UP:
+                    case KeyEvent.VK_W:
+                        camera.pan(0, -step);
+                        break;
+                    case KeyEvent.VK_DOWN:
+                    case KeyEvent.VK_S:
+                        camera.pan(0, step);
+                        break;
+                    case KeyEvent.VK_EQUALS:
+                    case KeyEvent.VK_PLUS:
+                    case KeyEvent.VK_ADD:
+                        camera.zoomAt(1.25f, camera.viewWidth / 2.0f, camera.viewHeight / 2.0f);
+                        break;
+                    case KeyEvent.VK_MINUS:
+                    case KeyEvent.VK_SUBTRACT:
+                        camera.zoomAt(0.8f, camera.viewWidth / 2.0f, camera.viewHeight / 2.0f);
+                        break;
+                    case KeyEvent.VK_0:
+                    case KeyEvent.VK_HOME:
+                        camera.reset();
+                        break;
+                    case KeyEvent.VK_OPEN_BRACKET:
+                        clock.slower();
+                        break;
+                    case KeyEvent.VK_CLOSE_BRACKET:
+                        clock.faster();
+                        break;
+                    case KeyEvent.VK_P:
+                        clock.togglePause();
+                        break;
+                }
+            }
+        });
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        synchronized (sim) {
-            renderer.draw(g, sim);
+        try {
+            synchronized (sim) {
+                renderer.draw(g, sim, camera, clock);
+            }
+        } finally {
+            // A failed paint must not leave the scheduler skipping repaints
+            clock.framePainted();
         }
     }
 
     public void run() {
-        long lastTime = System.nanoTime();
         while (true) {
-            long now = System.nanoTime();
-            float dt = (now - lastTime) / 1_000_000_000.0f;
-            lastTime = now;
-
-            // Cap dt to avoid explosion
-            if (dt > 0.05f)
-                dt = 0.05f;
-
             sim.temperature = iot.getTemperature();
-            // Sub-stepping for stability
-            int steps = 5; // Run 5x faster
-            float subDt = dt; // Keep dt small per step
-            for (int i = 0; i < steps; i++) {
+
+            // Fixed steps owed for the real time that passed, scaled by the
+            // time scale; whatever does not fit in the frame budget is shed
+            int owed = clock.beginFrame();
+            int done = 0;
+            while (done < owed) {
                 synchronized (sim) {
-                    sim.update(subDt);
+                    sim.update(clock.fixedDt);
                 }
+                done++;
+                if (clock.overBudget())
+                    break;
             }
-            repaint();
+            clock.endSteps(owed, done);
 
-            try {
-                Thread.sleep(16); // ~60 FPS
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            if (clock.shouldRender())
+                repaint();
+            clock.waitForNextFrame();
         }
     }
 
+    // Optional arguments: world width and height (defaults to the window size)
     public static void main(String[] args) {
+        int worldWidth = 800;
+        int worldHeight = 600;
+        if (args.length == 2) {
+            worldWidth = parseSize(args[0]);
+            worldHeight = parseSize(args[1]);
+        } else if (args.length != 0) {
+            usage();
+        }
+
         JFrame frame = new JFrame("Ameba Earth");
-        Main game = new Main();
+        Main game = new Main(worldWidth, worldHeight);
         frame.add(game);
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+        game.requestFocusInWindow();
 
         game.run();
     }
+
+    private static int parseSize(String arg) {
+        try {
+            int size = Integer.parseInt(arg);
+            if (size > 0)
+                return size;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        usage();
+        return 0;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java Main [worldWidth worldHeight]");
+        System.err.println("Both sizes are positive integers in pixels; the default is 800 600.");
+        System.exit(1);
+    }
 }
@@ -1,19 +1,39 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 public class Renderer {
+    // Extra world-space border around the view when querying the grid, so
+    // blobs whose center is just off-screen still draw their visible edge.
+    static final float VIEW_MARGIN = 100.0f;
+
     BufferedImage buffer;
     int width, height;
     int[] pixels;
 
     public Renderer(int width, int height) {
+        resize(width, height);
+    }
+
+    // The offscreen buffer always matches the panel
+    void resize(int width, int height) {
+        if (buffer != null && width == this.width && height == this.height)
+            return;
         this.width = width;
         this.height = height;
         buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         pixels = new int[width * height];
     }
 
-    public void draw(Graphics g, Simulation sim) {
+    public void draw(Graphics g, Simulation sim, Camera camera, FrameScheduler clock) {
+        // Only entities in grid cells overlapping the view are drawn, so the
+        // cost follows what is on screen rather than the total population.
+        List<Amoeba> visibleAmoebas = sim.grid.queryAmoebas(
+                camera.left() - VIEW_MARGIN, camera.top() - VIEW_MARGIN,
+                camera.right() + VIEW_MARGIN, camera.bottom() + VIEW_MARGIN);
+        List<Food> visibleFood = sim.grid.queryFood(
+                camera.left(), camera.top(), camera.right(), camera.bottom());
+
         // Metaball rendering
         // For performance, we only scan bounding boxes of amoebas, or just do a full
         // pass if optimized.
@@ -29,9 +49,10 @@ public class Renderer {
         g2d.setComposite(AlphaComposite.Clear);
         g2d.fillRect(0, 0, width, height);
         g2d.setComposite(AlphaComposite.SrcOver);
+        camera.apply(g2d);
 
         // Draw "influence" blobs
-        for (Amoeba a : sim.amoebas) {
+        for (Amoeba a : visibleAmoebas) {
             Color c = a.genes.color;
             Color centerColor = new Color(c.getRed(), c.getGreen(), c.getBlue(), 255);
             Color edgeColor = new Color(c.getRed(), c.getGreen(), c.getBlue(), 0);
@@ -73,11 +94,17 @@ public class Renderer {
         g.fillRect(0, 0, width, height);
         g.drawImage(buffer, 0, 0, null);
 
+        // World-space overlay drawn through the camera
+        Graphics2D world = (Graphics2D) g.create();
+        camera.apply(world);
+        world.setColor(Color.DARK_GRAY);
+        world.drawRect(0, 0, sim.width, sim.height);
+
         // Draw Character Details (Eyes & Nucleus)
-        for (Amoeba a : sim.amoebas) {
+        for (Amoeba a : visibleAmoebas) {
             // Nucleus
-            g.setColor(new Color(0, 0, 0, 50));
-            g.fillOval((int) a.center.x - 6, (int) a.center.y - 6, 12, 12);
+            world.setColor(new Color(0, 0, 0, 50));
+            world.fillOval((int) a.center.x - 6, (int) a.center.y - 6, 12, 12);
 
             // Calculate direction for eyes
             Vector2 vel = new Vector2(0, 0);
@@ -106,22 +133,23 @@ public class Renderer {
             float py = dx * eyeSpacing;
 
             // Draw Eyes (White)
-            g.setColor(Color.WHITE);
-            g.fillOval((int) (ex + px) - 5, (int) (ey + py) - 5, 10, 10);
-            g.fillOval((int) (ex - px) - 5, (int) (ey - py) - 5, 10, 10);
+            world.setColor(Color.WHITE);
+            world.fillOval((int) (ex + px) - 5, (int) (ey + py) - 5, 10, 10);
+            world.fillOval((int) (ex - px) - 5, (int) (ey - py) - 5, 10, 10);
 
             // Draw Pupils (Black) - looking slightly forward
-            g.setColor(Color.BLACK);
+            world.setColor(Color.BLACK);
             float pupilOffset = 2.0f;
-            g.fillOval((int) (ex + px + dx * pupilOffset) - 2, (int) (ey + py + dy * pupilOffset) - 2, 4, 4);
-            g.fillOval((int) (ex - px + dx * pupilOffset) - 2, (int) (ey - py + dy * pupilOffset) - 2, 4, 4);
+            world.fillOval((int) (ex + px + dx * pupilOffset) - 2, (int) (ey + py + dy * pupilOffset) - 2, 4, 4);
+            world.fillOval((int) (ex - px + dx * pupilOffset) - 2, (int) (ey - py + dy * pupilOffset) - 2, 4, 4);
         }
 
         // Draw Food
-        g.setColor(Color.GREEN);
-        for (Food f : sim.foods) {
-            g.fillOval((int) f.pos.x - 3, (int) f.pos.y - 3, 6, 6);
+        world.setColor(Color.GREEN);
+        for (Food f : visibleFood) {
+            world.fillOval((int) f.pos.x - 3, (int) f.pos.y - 3, 6, 6);
         }
+        world.dispose();
 
         // UI
         g.setColor(Color.WHITE);
@@ -130,5 +158,14 @@ public class Renderer {
         g.drawString("Food: " + sim.foods.size(), 10, 60);
         g.setColor(Color.YELLOW);
         g.drawString(String.format("Temp: %.1f C", sim.temperature), 10, 80);
+        g.setColor(Color.WHITE);
+        g.drawString(String.format("Zoom: %.2fx  Visible: %d", camera.zoom, visibleAmoebas.size()), 10, 100);
+        g.drawString(String.format("Speed: %s  Sim: %.0f Hz  Frame: %.0f Hz",
+                clock.paused ? "paused" : String.format("%.3gx", clock.timeScale), clock.simHz, clock.frameHz), 10, 120);
+        if (clock.shedSteps > 0 || clock.shedFrames > 0) {
+            g.setColor(Color.ORANGE);
+            g.drawString(String.format("Behind: shed %d steps, %d frames /s", clock.shedSteps, clock.shedFrames), 10,
+                    140);
+        }
     }
 }
@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Splits the world into a grid of cols x rows rectangular regions
+class ShardLayout {
+    final int cols, rows;
+    final int worldWidth, worldHeight;
+
+    ShardLayout(int cols, int rows, int worldWidth, int worldHeight) {
+        this.cols = cols;
+        this.rows = rows;
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+    }
+
+    int count() {
+        return cols * rows;
+    }
+
+    int boundX(int col) {
+        return col * worldWidth / cols;
+    }
+
+    int boundY(int row) {
+        return row * worldHeight / rows;
+    }
+
+    int x0(int shard) {
+        return boundX(shard % cols);
+    }
+
+    int x1(int shard) {
+        return boundX(shard % cols + 1);
+    }
+
+    int y0(int shard) {
+        return boundY(shard / cols);
+    }
+
+    int y1(int shard) {
+        return boundY(shard / cols + 1);
+    }
+
+    // Same rule as Simulation.owns: lower bounds inclusive, upper exclusive
+    // except at the far world edge
+    int ownerOf(float x, float y) {
+        int col = 0;
+        while (col < cols - 1 && x >= boundX(col + 1))
+            col++;
+        int row = 0;
+        while (row < rows - 1 && y >= boundY(row + 1))
+            row++;
+        return row * cols + col;
+    }
+
+    // Every other region within margin of this one. With regions narrower
+    // than the margin this reaches past the eight adjacent ones.
+    int[] neighbors(int shard, int margin) {
+        List<Integer> result = new ArrayList<>();
+        for (int n = 0; n < count(); n++) {
+            if (n == shard)
+                continue;
+            int gapX = Math.max(0, Math.max(x0(n) - x1(shard), x0(shard) - x1(n)));
+            int gapY = Math.max(0, Math.max(y0(n) - y1(shard), y0(shard) - y1(n)));
+            if (gapX <= margin && gapY <= margin)
+                result.add(n);
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    boolean nearRegion(int shard, Vector2 p, float margin) {
+        return p.x >= x0(shard) - margin && p.x <= x1(shard) + margin
+                && p.y >= y0(shard) - margin && p.y <= y1(shard) + margin;
+    }
+}
+
+// One region of a sharded world. A step runs the phases of
+// Simulation.update with a round of messages to every neighbour between
+// them:
+//   0. ghosts of the amoebas near the neighbour, and of the food near it
+//      that appeared or was eaten since the last step, then move
+//   1. claims on the neighbour's food
+//   2. grants for claims on our food, then reproduce
+//   3. state of the amoebas sent as ghosts in round 0
+//   4. grants for predators that ate our amoebas, then finish
+//   5. amoebas that crossed into the neighbour, so they are owned (and
+//      ghosted) again before the next step
+// Each shard decides only about what it owns, from the same state a single
+// process would see, so the sharded world matches the single one.
+public class Shard {
+    // Two grid cells: the 3x3 cell neighbourhood of any owned entity then
+    // sees exactly the entities a single whole-world grid would return.
+    static final int HALO = 2 * Simulation.CELL_SIZE;
+    static final int ROUNDS = 6;
+
+    final int id;
+    final ShardLayout layout;
+    final Simulation sim;
+    final Transport transport;
+    final int[] neighbors;
+    long step;
+
+    // Shard that owns each ghost, for routing claims and grants
+    private final Map<Long, Integer> amoebaOwner = new HashMap<>();
+    private final Map<Long, Integer> foodOwner = new HashMap<>();
+    // Messages from neighbours that are already a round ahead of us, keyed
+    // by step * ROUNDS + round
+    private final Map<Long, List<ShardMessage>> early = new HashMap<>();
+
+    public Shard(ShardLayout layout, int id, long seed, Transport transport) {
+        this.id = id;
+        this.layout = layout;
+        this.transport = transport;
+        this.neighbors = layout.neighbors(id, HALO);
+        this.sim = new Simulation(layout.worldWidth, layout.worldHeight, seed,
+                layout.x0(id), layout.y0(id), layout.x1(id), layout.y1(id), HALO);
+        sim.addedFood = new ArrayList<>(sim.foods);
+        sim.removedFood = new ArrayList<>();
+    }
+
+    public void step(float dt) throws IOException, InterruptedException {
+        Map<Integer, ShardMessage> out = messages(0);
+        // Kept to send the same amoebas' state in round 3
+        Map<Integer, List<Amoeba>> ghostsSent = new HashMap<>();
+        for (int n : neighbors) {
+            ShardMessage m = out.get(n);
+            List<Amoeba> halo = haloAmoebas(n);
+            ghostsSent.put(n, halo);
+            for (Amoeba a : halo)
+                m.ghosts.add(new GhostState(a));
+            for (Food f : sim.addedFood) {
+                if (layout.nearRegion(n, f.pos, HALO))
+                    m.ghostFoods.add(f);
+            }
+            for (Food f : sim.removedFood) {
+                if (layout.nearRegion(n, f.pos, HALO))
+                    m.eatenFoods.add(f.id);
+            }
+        }
+        sim.addedFood.clear();
+        sim.removedFood.clear();
+        List<GhostState> ghosts = new ArrayList<>();
+        amoebaOwner.clear();
+        for (ShardMessage in : exchange(0, out)) {
+            for (GhostState g : in.ghosts)
+                amoebaOwner.put(g.id, in.from);
+            ghosts.addAll(in.ghosts);
+            for (Food f : in.ghostFoods) {
+                foodOwner.put(f.id, in.from);
+                sim.addGhostFood(f);
+            }
+            for (long foodId : in.eatenFoods) {
+                foodOwner.remove(foodId);
+                sim.removeGhostFood(foodId);
+            }
+        }
+        sim.setGhostAmoebas(ghosts);
+
+        sim.move(dt);
+
+        out = messages(1);
+        List<Claim> claims = new ArrayList<>();
+        for (Claim c : sim.proposeFood()) {
+            if (sim.foodById.containsKey(c.targetId))
+                claims.add(c);
+            else
+                to(out, foodOwner.get(c.targetId)).claims.add(c);
+        }
+        for (ShardMessage in : exchange(1, out)) {
+            for (Claim c : in.claims)
+                amoebaOwner.put(c.claimantId, in.from);
+            claims.addAll(in.claims);
+        }
+
+        out = messages(2);
+        List<Grant> grants = route(sim.resolveFood(claims), out);
+        for (ShardMessage in : exchange(2, out))
+            grants.addAll(in.grants);
+        sim.applyGrants(grants);
+
+        sim.reproduce();
+
+        out = messages(3);
+        for (int n : neighbors) {
+            for (Amoeba a : ghostsSent.get(n))
+                out.get(n).ghosts.add(new GhostState(a));
+        }
+        for (ShardMessage in : exchange(3, out))
+            sim.updateGhosts(in.ghosts);
+
+        out = messages(4);
+        grants = route(sim.resolvePredation(), out);
+        for (ShardMessage in : exchange(4, out))
+            grants.addAll(in.grants);
+        sim.applyGrants(grants);
+
+        sim.finish(dt);
+
+        out = messages(5);
+        for (Amoeba a : new ArrayList<>(sim.amoebas)) {
+            int owner = layout.ownerOf(a.center.x, a.center.y);
+            if (owner != id) {
+                sim.removeAmoeba(a);
+                to(out, owner).migrants.add(a);
+            }
+        }
+        for (ShardMessage in : exchange(5, out)) {
+            for (Amoeba a : in.migrants)
+                sim.addAmoeba(a);
+        }
+        step++;
+    }
+
+    // Owned amoebas within HALO of a neighbour, found through the grid cells
+    // of the band of our region that faces it
+    private List<Amoeba> haloAmoebas(int n) {
+        float minX = Math.max(layout.x0(id), layout.x0(n) - HALO);
+        float minY = Math.max(layout.y0(id), layout.y0(n) - HALO);
+        float maxX = Math.min(layout.x1(id), layout.x1(n) + HALO);
+        float maxY = Math.min(layout.y1(id), layout.y1(n) + HALO);
+        List<Amoeba> result = new ArrayList<>();
+        for (Amoeba a : sim.grid.queryAmoebas(minX, minY, maxX, maxY)) {
+            if (!a.ghost && layout.nearRegion(n, a.center, HALO))
+                result.add(a);
+        }
+        return result;
+    }
+
+    // Keeps the grants for our own amoebas and queues the rest for the
+    // shards that own the claimants
+    private List<Grant> route(List<Grant> grants, Map<Integer, ShardMessage> out) {
+        List<Grant> local = new ArrayList<>();
+        for (Grant g : grants) {
+            if (sim.amoebaById.containsKey(g.claimantId))
+                local.add(g);
+            else
+                to(out, amoebaOwner.get(g.claimantId)).grants.add(g);
+        }
+        return local;
+    }
+
+    // One empty message per neighbour for the given round
+    private Map<Integer, ShardMessage> messages(int round) {
+        Map<Integer, ShardMessage> out = new HashMap<>();
+        for (int n : neighbors)
+            out.put(n, new ShardMessage(id, step, round));
+        return out;
+    }
+
+    private ShardMessage to(Map<Integer, ShardMessage> out, Integer shard) {
+        ShardMessage m = shard == null ? null : out.get(shard);
+        if (m == null)
+            throw new IllegalStateException("Shard " + id + " cannot reach non-neighbour shard " + shard);
+        return m;
+    }
+
+    private List<ShardMessage> exchange(int round, Map<Integer, ShardMessage> out)
+            throws IOException, InterruptedException {
+        for (int n : neighbors)
+            transport.send(n, out.get(n));
+        return receiveRound(round);
+    }
+
+    // Exactly one message per neighbour per round, applied in shard order so
+    // that runs are repeatable regardless of arrival order
+    private List<ShardMessage> receiveRound(int round) throws IOException, InterruptedException {
+        long key = step * ROUNDS + round;
+        List<ShardMessage> messages = early.remove(key);
+        if (messages == null)
+            messages = new ArrayList<>();
+        while (messages.size() < neighbors.length) {
+            ShardMessage m = transport.receive();
+            long mKey = m.step * ROUNDS + m.round;
+            if (mKey == key)
+                messages.add(m);
+            else
+                early.computeIfAbsent(mKey, k -> new ArrayList<>()).add(m);
+        }
+        messages.sort(Comparator.comparingInt(m -> m.from));
+        return messages;
+    }
+
+    String summary() {
+        float energy = 0;
+        for (Amoeba a : sim.amoebas)
+            energy += a.energy;
+        return String.format("SUMMARY %d %d %d %.3f %d", id, sim.amoebas.size(), sim.foods.size(), energy,
+                transport.bytesSent());
+    }
+
+    // Runs one shard as its own process over local sockets:
+    // java Shard <id> <cols> <rows> <worldWidth> <worldHeight> <seed> <steps> [basePort] [host]
+    public static void main(String[] args) throws Exception {
+        int id = Integer.parseInt(args[0]);
+        ShardLayout layout = new ShardLayout(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        long seed = Long.parseLong(args[5]);
+        int steps = Integer.parseInt(args[6]);
+        int basePort = args.length > 7 ? Integer.parseInt(args[7]) : 47000;
+        String host = args.length > 8 ? args[8] : "127.0.0.1";
+
+        try (Transport transport = new SocketTransport(id, host, basePort)) {
+            Shard shard = new Shard(layout, id, seed, transport);
+            for (int i = 0; i < steps; i++)
+                shard.step(ShardedWorld.DT);
+            // Exact float text, so the runner can compare positions
+            for (Amoeba a : shard.sim.amoebas)
+                System.out.println("AMOEBA " + a.id + " " + a.center.x + " " + a.center.y);
+            System.out.println(shard.summary());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs a sharded world headless and checks it against a single-process run
+// with the same seed:
+// java ShardedWorld [cols] [rows] [steps] [seed] [local|socket|process] [worldWidth] [worldHeight]
+//
+// local   - shards on threads, in-process transport
+// socket  - shards on threads, talking over local sockets
+// process - one JVM per shard over local sockets
+//
+// Shards see neighbours through ghosts with the same grid cells and the same
+// random streams as a single process, and settle border interactions within
+// the step, so they should match it exactly. The tolerances below only leave
+// room for float rounding in the totals. The default run is long enough for
+// amoebas to cross borders, eat across them and divide.
+//
+// Both runs report their throughput in steps per second, and the sharded
+// run the message bytes its shards sent per step, so the cost of sharding
+// can be compared with what it buys. Process mode includes JVM startup.
+public class ShardedWorld {
+    static final float DT = 0.016f;
+    static final int BASE_PORT = 47000;
+
+    // Relative difference allowed in population, food count and total energy
+    static final float COUNT_TOLERANCE = 0.001f;
+    // Share of single-process amoebas that must still exist in the sharded run
+    static final float MATCH_TOLERANCE = 1.0f;
+    // Mean center distance in pixels between matched amoebas
+    static final float POSITION_TOLERANCE = 0.01f;
+
+    static class Stats {
+        int population, food;
+        float energy;
+        // Message bytes sent by all shards
+        long bytes;
+        Map<Long, Vector2> centers = new HashMap<>();
+
+        void add(Simulation sim) {
+            population += sim.amoebas.size();
+            food += sim.foods.size();
+            for (Amoeba a : sim.amoebas) {
+                energy += a.energy;
+                centers.put(a.id, a.center);
+            }
+        }
+
+        // Lines printed by Shard.main
+        void add(String line) {
+            String[] parts = line.trim().split(" ");
+            if (parts[0].equals("AMOEBA")) {
+                centers.put(Long.parseLong(parts[1]), new Vector2(Float.parseFloat(parts[2]),
+                        Float.parseFloat(parts[3])));
+            } else {
+                population += Integer.parseInt(parts[2]);
+                food += Integer.parseInt(parts[3]);
+                energy += Float.parseFloat(parts[4]);
+                bytes += Long.parseLong(parts[5]);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cols = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 3000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+        String mode = args.length > 4 ? args[4] : "local";
+        int worldWidth = args.length > 5 ? Integer.parseInt(args[5]) : 1600;
+        int worldHeight = args.length > 6 ? Integer.parseInt(args[6]) : 1200;
+        ShardLayout layout = new ShardLayout(cols, rows, worldWidth, worldHeight);
+
+        long start = System.nanoTime();
+        Simulation single = new Simulation(worldWidth, worldHeight, seed);
+        for (int i = 0; i < steps; i++)
+            single.update(DT);
+        long singleNanos = System.nanoTime() - start;
+        Stats expected = new Stats();
+        expected.add(single);
+        System.out.printf("single:  %d amoebas, %d food, energy %.1f (%d ms, %.0f steps/s)%n", expected.population,
+                expected.food, expected.energy, singleNanos / 1_000_000, steps * 1e9 / singleNanos);
+
+        start = System.nanoTime();
+        Stats actual = mode.equals("process") ? runProcesses(layout, seed, steps) : runThreads(layout, seed, steps,
+                mode.equals("socket"));
+        long shardedNanos = System.nanoTime() - start;
+        System.out.printf("sharded: %d amoebas, %d food, energy %.1f (%d ms, %.0f steps/s, %s, %dx%d)%n",
+                actual.population, actual.food, actual.energy, shardedNanos / 1_000_000, steps * 1e9 / shardedNanos,
+                mode, cols, rows);
+        System.out.printf("throughput: %.2fx single, %.1f KB sent per step%n", (double) singleNanos / shardedNanos,
+                actual.bytes / 1024.0 / steps);
+
+        boolean ok = within("population", expected.population, actual.population)
+                & within("food", expected.food, actual.food)
+                & within("energy", expected.energy, actual.energy);
+
+        int matched = 0;
+        float error = 0;
+        for (Map.Entry<Long, Vector2> e : expected.centers.entrySet()) {
+            Vector2 b = actual.centers.get(e.getKey());
+            if (b != null) {
+                matched++;
+                error += e.getValue().dist(b);
+            }
+        }
+        float share = expected.population == 0 ? 1.0f : (float) matched / expected.population;
+        float meanError = matched == 0 ? 0 : error / matched;
+        System.out.printf("matched: %.0f%% of amoebas, mean position error %.3f px%n", share * 100, meanError);
+        ok &= share >= MATCH_TOLERANCE && meanError <= POSITION_TOLERANCE;
+
+        System.out.println(ok ? "PASS: within tolerance" : "FAIL: outside tolerance");
+        System.exit(ok ? 0 : 1);
+    }
+
+    static boolean within(String name, float expected, float actual) {
+        float scale = Math.max(1.0f, Math.abs(expected));
+        boolean ok = Math.abs(actual - expected) / scale <= COUNT_TOLERANCE;
+        if (!ok)
+            System.out.printf("%s differs: expected %.1f, got %.1f%n", name, expected, actual);
+        return ok;
+    }
+
+    static Stats runThreads(ShardLayout layout, long seed, int steps, boolean sockets) throws Exception {
+        Transport[] transports = new Transport[layout.count()];
+        if (sockets) {
+            for (int i = 0; i < transports.length; i++)
+                transports[i] = new SocketTransport(i, "127.0.0.1", BASE_PORT);
+        } else {
+            transports = LocalTransport.create(layout.count());
+        }
+
+        Shard[] shards = new Shard[layout.count()];
+        Thread[] threads = new Thread[shards.length];
+        Exception[] failure = new Exception[1];
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = new Shard(layout, i, seed, transports[i]);
+            shards[i] = shard;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int s = 0; s < steps; s++)
+                        shard.step(DT);
+                } catch (Exception e) {
+                    // Keep the first failure and stop the other shards, which
+                    // would otherwise wait on this one
+                    synchronized (failure) {
+                        if (failure[0] == null) {
+                            failure[0] = e;
+                            for (Thread t : threads) {
+                                if (t != null)
+                                    t.interrupt();
+                            }
+                        }
+                    }
+                }
+            }, "shard-" + i);
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        long bytes = 0;
+        for (Transport t : transports) {
+            bytes += t.bytesSent();
+            t.close();
+        }
+        if (failure[0] != null)
+            throw failure[0];
+
+        Stats stats = new Stats();
+        stats.bytes = bytes;
+        for (Shard shard : shards)
+            stats.add(shard.sim);
+        return stats;
+    }
+
+    static Stats runProcesses(ShardLayout layout, long seed, int steps) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classpath = System.getProperty("java.class.path");
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < layout.count(); i++) {
+            ProcessBuilder pb = new ProcessBuilder(java, "-cp", classpath, "Shard", String.valueOf(i),
+                    String.valueOf(layout.cols), String.valueOf(layout.rows), String.valueOf(layout.worldWidth),
+                    String.valueOf(layout.worldHeight), String.valueOf(seed), String.valueOf(steps),
+                    String.valueOf(BASE_PORT));
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            processes.add(pb.start());
+        }
+
+        Stats stats = new Stats();
+        for (Process p : processes) {
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    if (line.startsWith("SUMMARY") || line.startsWith("AMOEBA"))
+                        stats.add(line);
+                }
+            }
+            if (p.waitFor() != 0)
+                throw new IllegalStateException("Shard process exited with " + p.exitValue());
+        }
+        return stats;
+    }
+}
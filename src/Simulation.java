@@ -1,9 +1,16 @@
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.awt.Color;
 
-class Vector2 {
+class Vector2 implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     float x, y;
 
     Vector2(float x, float y) {
@@ -46,7 +53,9 @@ class Vector2 {
     }
 }
 
-class Node {
+class Node implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     Vector2 pos, vel, acc;
     float mass = 1.0f;
     float radius = 8.0f;
@@ -58,7 +67,9 @@ class Node {
     }
 }
 
-class Spring {
+class Spring implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     Node a, b;
     float restLength;
     float stiffness = 80.0f;
@@ -71,22 +82,22 @@ class Spring {
     }
 }
 
-class Genes {
+class Genes implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     float maxSpeed;
     float senseRadius;
     float metabolism;
     Color color;
 
-    Genes() {
-        Random r = new Random();
+    Genes(Random r) {
         maxSpeed = 60.0f + r.nextFloat() * 40.0f;
         senseRadius = 100.0f + r.nextFloat() * 100.0f;
         metabolism = 0.8f + r.nextFloat() * 0.4f;
         color = new Color(r.nextInt(100), 150 + r.nextInt(105), 200 + r.nextInt(55));
     }
 
-    Genes(Genes parent) {
-        Random r = new Random();
+    Genes(Genes parent, Random r) {
         maxSpeed = parent.maxSpeed + (r.nextFloat() - 0.5f) * 10.0f;
         senseRadius = parent.senseRadius + (r.nextFloat() - 0.5f) * 20.0f;
         metabolism = parent.metabolism + (r.nextFloat() - 0.5f) * 0.1f;
@@ -102,7 +113,18 @@ class Genes {
     }
 }
 
-class Amoeba {
+class Amoeba implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    long id;
+    // Each amoeba draws from its own stream so that its behaviour does not
+    // depend on the order it is updated in (or on which shard owns it).
+    Random rng;
+    // Read-only copy of an amoeba owned by a neighbouring shard
+    boolean ghost;
+    // Cell in the SpatialGrid: cell number + 1 (0 when not indexed).
+    // Transient so copies arrive unindexed.
+    transient int gridCell;
     List<Node> nodes = new ArrayList<>();
     List<Spring> springs = new ArrayList<>();
     Vector2 center;
@@ -110,12 +132,16 @@ class Amoeba {
     Genes genes;
     float energy = 50.0f;
     float wanderAngle;
+    // Mean node velocity of a ghost, which arrives without its nodes
+    Vector2 ghostVelocity;
 
-    Amoeba(float x, float y, float radius, int numNodes, Genes genes) {
+    Amoeba(long id, float x, float y, float radius, int numNodes, Genes genes, Random rng) {
+        this.id = id;
+        this.rng = rng;
         this.targetRadius = radius;
-        this.genes = (genes == null) ? new Genes() : genes;
+        this.genes = (genes == null) ? new Genes(rng) : genes;
         center = new Vector2(x, y);
-        this.wanderAngle = (float) (Math.random() * Math.PI * 2);
+        this.wanderAngle = (float) (rng.nextFloat() * Math.PI * 2);
 
         for (int i = 0; i < numNodes; i++) {
             float angle = (float) (i * 2 * Math.PI / numNodes);
@@ -127,6 +153,26 @@ class Amoeba {
         buildSprings();
     }
 
+    // Ghost of an amoeba owned by another shard, carrying only what
+    // neighbours read
+    Amoeba(GhostState g) {
+        this.id = g.id;
+        this.ghost = true;
+        this.center = new Vector2(g.x, g.y);
+        this.targetRadius = g.targetRadius;
+        this.ghostVelocity = new Vector2(g.vx, g.vy);
+    }
+
+    // Mean node velocity, which neighbours align with
+    Vector2 velocity() {
+        if (ghost)
+            return ghostVelocity;
+        Vector2 v = new Vector2(0, 0);
+        for (Node n : nodes)
+            v = v.add(n.vel);
+        return v.mult(1.0f / nodes.size());
+    }
+
     void buildSprings() {
         springs.clear();
         int numNodes = nodes.size();
@@ -210,30 +256,104 @@ class Amoeba {
     }
 
     Amoeba divide() {
-        Genes childGenes = new Genes(this.genes);
+        Genes childGenes = new Genes(this.genes, rng);
         float newRadius = this.targetRadius * 0.7f;
-        return new Amoeba(center.x + 10, center.y + 10, newRadius, nodes.size(), childGenes);
+        // The child's id and stream come from the parent's stream, so lineages
+        // are reproducible for a given seed
+        long childId = rng.nextLong();
+        Random childRng = new Random(rng.nextLong());
+        return new Amoeba(childId, center.x + 10, center.y + 10, newRadius, nodes.size(), childGenes, childRng);
     }
 }
 
 class Food {
+    long id;
+    boolean ghost;
+    transient int gridCell, gridSlot;
     Vector2 pos;
     float value = 30.0f;
 
-    Food(float x, float y) {
+    Food(long id, float x, float y) {
+        this.id = id;
         pos = new Vector2(x, y);
     }
 }
 
+// Request to eat a piece of food, judged by the food's owner
+class Claim {
+    long targetId;
+    long claimantId;
+    // Distance from the claimant to the food; the nearest claimant wins
+    float dist;
+
+    Claim(long targetId, long claimantId, float dist) {
+        this.targetId = targetId;
+        this.claimantId = claimantId;
+        this.dist = dist;
+    }
+}
+
+// Reward for the claimant once the owner has removed the target
+class Grant {
+    long claimantId;
+    long targetId;
+    float energy;
+    float radiusGain;
+    float springScale;
+
+    Grant(long claimantId, long targetId, float energy, float radiusGain, float springScale) {
+        this.claimantId = claimantId;
+        this.targetId = targetId;
+        this.energy = energy;
+        this.radiusGain = radiusGain;
+        this.springScale = springScale;
+    }
+}
+
+// What neighbours read of an amoeba near their region: sent at the start of
+// a step to build its ghost, and again once its owner has moved it, fed it
+// and let it divide, so neighbours can judge predation on it
+class GhostState {
+    long id;
+    float x, y;
+    float targetRadius;
+    float vx, vy;
+
+    GhostState(Amoeba a) {
+        this(a.id, a.center.x, a.center.y, a.targetRadius, 0, 0);
+        Vector2 v = a.velocity();
+        this.vx = v.x;
+        this.vy = v.y;
+    }
+
+    GhostState(long id, float x, float y, float targetRadius, float vx, float vy) {
+        this.id = id;
+        this.x = x;
+        this.y = y;
+        this.targetRadius = targetRadius;
+        this.vx = vx;
+        this.vy = vy;
+    }
+}
+
 class SpatialGrid {
     int cellSize;
     int cols, rows;
+    // World position of cell (0, 0); a shard's grid only covers its region
+    // and halo, but stays aligned with the cells of a whole-world grid
+    int originX, originY;
     List<Amoeba>[][] amoebaCells;
     List<Food>[][] foodCells;
 
-    @SuppressWarnings("unchecked")
     SpatialGrid(int width, int height, int cellSize) {
+        this(0, 0, width, height, cellSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    SpatialGrid(int originX, int originY, int width, int height, int cellSize) {
         this.cellSize = cellSize;
+        this.originX = originX;
+        this.originY = originY;
         this.cols = width / cellSize + 1;
         this.rows = height / cellSize + 1;
         amoebaCells = new ArrayList[cols][rows];
@@ -246,35 +366,99 @@ class SpatialGrid {
         }
     }
 
-    void clear() {
-        for (int x = 0; x < cols; x++) {
-            for (int y = 0; y < rows; y++) {
-                amoebaCells[x][y].clear();
-                foodCells[x][y].clear();
-            }
-        }
+    int cellX(float x) {
+        return (int) Math.floor((x - originX) / cellSize);
+    }
+
+    int cellY(float y) {
+        return (int) Math.floor((y - originY) / cellSize);
+    }
+
+    // Cell number + 1 for a world position, or 0 outside the grid
+    int cellOf(Vector2 pos) {
+        int x = cellX(pos.x);
+        int y = cellY(pos.y);
+        if (x >= 0 && x < cols && y >= 0 && y < rows)
+            return x * rows + y + 1;
+        return 0;
     }
 
+    // Entities are kept in the grid between updates and remember their cell.
+    // Amoeba cells are kept in id order, so neighbourhood queries come out in
+    // the same order however the cells were filled: flocking sums depend on
+    // it, and a shard must see the same order as a whole-world grid.
     void addAmoeba(Amoeba a) {
-        int x = (int) (a.center.x / cellSize);
-        int y = (int) (a.center.y / cellSize);
-        if (x >= 0 && x < cols && y >= 0 && y < rows) {
-            amoebaCells[x][y].add(a);
+        int cell = cellOf(a.center);
+        a.gridCell = cell;
+        if (cell == 0)
+            return;
+        List<Amoeba> list = amoebaCells[(cell - 1) / rows][(cell - 1) % rows];
+        list.add(slotOf(list, a.id), a);
+    }
+
+    void removeAmoeba(Amoeba a) {
+        if (a.gridCell == 0)
+            return;
+        List<Amoeba> list = amoebaCells[(a.gridCell - 1) / rows][(a.gridCell - 1) % rows];
+        // A migrant and the ghost it leaves behind share an id until the
+        // ghosts are replaced, so match the object itself
+        int slot = slotOf(list, a.id);
+        while (list.get(slot) != a)
+            slot++;
+        list.remove(slot);
+        a.gridCell = 0;
+    }
+
+    // First index in an id-ordered cell whose id is not below the given one
+    private static int slotOf(List<Amoeba> list, long id) {
+        int lo = 0;
+        int hi = list.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list.get(mid).id < id)
+                lo = mid + 1;
+            else
+                hi = mid;
         }
+        return lo;
     }
 
+    // Re-buckets an amoeba only if it has crossed into another cell
+    void moveAmoeba(Amoeba a) {
+        if (cellOf(a.center) == a.gridCell)
+            return;
+        removeAmoeba(a);
+        addAmoeba(a);
+    }
+
+    // Food cells are unordered (food searches break ties by id); each food
+    // remembers its slot so removal is a swap with the last entry
     void addFood(Food f) {
-        int x = (int) (f.pos.x / cellSize);
-        int y = (int) (f.pos.y / cellSize);
-        if (x >= 0 && x < cols && y >= 0 && y < rows) {
-            foodCells[x][y].add(f);
+        int cell = cellOf(f.pos);
+        f.gridCell = cell;
+        if (cell == 0)
+            return;
+        List<Food> list = foodCells[(cell - 1) / rows][(cell - 1) % rows];
+        f.gridSlot = list.size();
+        list.add(f);
+    }
+
+    void removeFood(Food f) {
+        if (f.gridCell == 0)
+            return;
+        List<Food> list = foodCells[(f.gridCell - 1) / rows][(f.gridCell - 1) % rows];
+        Food last = list.remove(list.size() - 1);
+        if (last != f) {
+            list.set(f.gridSlot, last);
+            last.gridSlot = f.gridSlot;
         }
+        f.gridCell = 0;
     }
 
     List<Amoeba> getPotentialAmoebaNeighbors(Vector2 pos) {
         List<Amoeba> result = new ArrayList<>();
-        int cx = (int) (pos.x / cellSize);
-        int cy = (int) (pos.y / cellSize);
+        int cx = cellX(pos.x);
+        int cy = cellY(pos.y);
         for (int i = -1; i <= 1; i++) {
             for (int j = -1; j <= 1; j++) {
                 int x = cx + i;
@@ -289,8 +473,8 @@ class SpatialGrid {
 
     List<Food> getPotentialFoodNeighbors(Vector2 pos) {
         List<Food> result = new ArrayList<>();
-        int cx = (int) (pos.x / cellSize);
-        int cy = (int) (pos.y / cellSize);
+        int cx = cellX(pos.x);
+        int cy = cellY(pos.y);
         for (int i = -1; i <= 1; i++) {
             for (int j = -1; j <= 1; j++) {
                 int x = cx + i;
@@ -302,39 +486,203 @@ class SpatialGrid {
         }
         return result;
     }
+
+    // All amoebas in cells overlapping the given world rectangle
+    List<Amoeba> queryAmoebas(float minX, float minY, float maxX, float maxY) {
+        List<Amoeba> result = new ArrayList<>();
+        int x0 = Math.max(0, cellX(minX));
+        int y0 = Math.max(0, cellY(minY));
+        int x1 = Math.min(cols - 1, cellX(maxX));
+        int y1 = Math.min(rows - 1, cellY(maxY));
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                result.addAll(amoebaCells[x][y]);
+            }
+        }
+        return result;
+    }
+
+    // All food in cells overlapping the given world rectangle
+    List<Food> queryFood(float minX, float minY, float maxX, float maxY) {
+        List<Food> result = new ArrayList<>();
+        int x0 = Math.max(0, cellX(minX));
+        int y0 = Math.max(0, cellY(minY));
+        int x1 = Math.min(cols - 1, cellX(maxX));
+        int y1 = Math.min(rows - 1, cellY(maxY));
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                result.addAll(foodCells[x][y]);
+            }
+        }
+        return result;
+    }
 }
 
 public class Simulation {
+    static final int CELL_SIZE = 200; // 200px cell size
+    static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
     List<Amoeba> amoebas = new ArrayList<>();
-    List<Food> foods = new ArrayList<>();
+    // Insertion ordered, so iteration is repeatable, with O(1) removal of
+    // eaten food from large fields
+    LinkedHashSet<Food> foods = new LinkedHashSet<>();
+    // Owned entities by id, for resolving claims and grants
+    Map<Long, Amoeba> amoebaById = new HashMap<>();
+    Map<Long, Food> foodById = new HashMap<>();
+    // Entities owned by neighbouring shards: amoebas are replaced every
+    // step, food stays until its owner reports it eaten
+    List<Amoeba> ghostAmoebas = new ArrayList<>();
+    Map<Long, Amoeba> ghostById = new HashMap<>();
+    Map<Long, Food> ghostFoodById = new HashMap<>();
+    // Owned food added and removed since a shard last told its neighbours;
+    // null unless a shard asks for them
+    List<Food> addedFood, removedFood;
+    // Collected by the phases of the current step, applied by finish()
+    List<Amoeba> newAmoebas = new ArrayList<>();
+    List<Amoeba> deadAmoebas = new ArrayList<>();
     float temperature = 20.0f;
     int width, height;
-    Random rand = new Random();
+    // Region owned by this simulation; the whole world unless sharded
+    int regionX0, regionY0, regionX1, regionY1;
+    long seed;
+    long step;
+    Random rand;
     SpatialGrid grid;
 
     public Simulation(int width, int height) {
+        this(width, height, new Random().nextLong());
+    }
+
+    public Simulation(int width, int height, long seed) {
+        this(width, height, seed, 0, 0, width, height, 0);
+    }
+
+    // A shard of a larger world. It keeps only the initial amoebas inside its
+    // region and indexes the region plus a halo of ghosts around it.
+    public Simulation(int width, int height, long seed, int regionX0, int regionY0, int regionX1, int regionY1,
+            int halo) {
         this.width = width;
         this.height = height;
-        this.grid = new SpatialGrid(width, height, 200); // 200px cell size
-
+        this.seed = seed;
+        this.regionX0 = regionX0;
+        this.regionY0 = regionY0;
+        this.regionX1 = regionX1;
+        this.regionY1 = regionY1;
+        this.rand = new Random(seed);
+
+        int gridX0 = Math.max(0, Math.floorDiv(regionX0 - halo, CELL_SIZE) * CELL_SIZE);
+        int gridY0 = Math.max(0, Math.floorDiv(regionY0 - halo, CELL_SIZE) * CELL_SIZE);
+        int gridX1 = Math.min(width, regionX1 + halo);
+        int gridY1 = Math.min(height, regionY1 + halo);
+        this.grid = new SpatialGrid(gridX0, gridY0, gridX1 - gridX0, gridY1 - gridY0, CELL_SIZE);
+
+        // Every shard walks the same sequence so ids and streams agree
         for (int i = 0; i < 8; i++) {
             float r = 20 + rand.nextFloat() * 20;
-            amoebas.add(new Amoeba(rand.nextFloat() * width, rand.nextFloat() * height, r, 12, null));
+            float x = rand.nextFloat() * width;
+            float y = rand.nextFloat() * height;
+            if (owns(x, y))
+                addAmoeba(new Amoeba(i, x, y, r, 12, null, new Random(seed ^ (i * GOLDEN))));
         }
     }
 
-    public void update(float dt) {
-        // Populate Grid
-        grid.clear();
-        for (Amoeba a : amoebas)
+    // Ownership test shared with ShardLayout; the far world edge belongs to
+    // the last region on each axis
+    boolean owns(float x, float y) {
+        return x >= regionX0 && (x < regionX1 || regionX1 >= width)
+                && y >= regionY0 && (y < regionY1 || regionY1 >= height);
+    }
+
+    // The grid is kept in step with the entity lists through these and the
+    // updates at the end of update(), so it is valid both for the next update
+    // and for the renderer's visibility queries in between.
+    void addAmoeba(Amoeba a) {
+        amoebas.add(a);
+        amoebaById.put(a.id, a);
+        grid.addAmoeba(a);
+    }
+
+    void removeAmoeba(Amoeba a) {
+        amoebas.remove(a);
+        amoebaById.remove(a.id);
+        grid.removeAmoeba(a);
+    }
+
+    void addFood(Food f) {
+        foods.add(f);
+        foodById.put(f.id, f);
+        grid.addFood(f);
+        if (addedFood != null)
+            addedFood.add(f);
+    }
+
+    void removeFood(Food f) {
+        foods.remove(f);
+        foodById.remove(f.id);
+        grid.removeFood(f);
+        if (removedFood != null)
+            removedFood.add(f);
+    }
+
+    // Ghost amoebas move, so they are replaced wholesale every step
+    void setGhostAmoebas(List<GhostState> states) {
+        for (Amoeba a : ghostAmoebas)
+            grid.removeAmoeba(a);
+        ghostAmoebas = new ArrayList<>();
+        ghostById.clear();
+        for (GhostState g : states) {
+            Amoeba a = new Amoeba(g);
+            ghostAmoebas.add(a);
+            ghostById.put(a.id, a);
             grid.addAmoeba(a);
-        for (Food f : foods)
-            grid.addFood(f);
+        }
+    }
 
-        List<Amoeba> newAmoebas = new ArrayList<>();
-        List<Amoeba> deadAmoebas = new ArrayList<>();
+    // Food never moves, so ghost food is only added and removed as its
+    // owner reports it
+    void addGhostFood(Food f) {
+        f.ghost = true;
+        ghostFoodById.put(f.id, f);
+        grid.addFood(f);
+    }
 
-        for (Amoeba a : amoebas) {
+    void removeGhostFood(long id) {
+        Food f = ghostFoodById.remove(id);
+        if (f != null)
+            grid.removeFood(f);
+    }
+
+    // Ghosts keep the grid cell they arrived in, as owned amoebas keep theirs
+    // until finish(), so both are found by the same neighbourhood queries
+    void updateGhosts(List<GhostState> states) {
+        for (GhostState g : states) {
+            Amoeba a = ghostById.get(g.id);
+            if (a != null) {
+                a.center = new Vector2(g.x, g.y);
+                a.targetRadius = g.targetRadius;
+            }
+        }
+    }
+
+    // A step runs in phases so that a sharded world can trade claims, grants
+    // and ghost states between them; one process simply runs them in order.
+    // Every decision is taken from a state all parties share, never from the
+    // order of a list, so both give the same result.
+    public void update(float dt) {
+        move(dt);
+        applyGrants(resolveFood(proposeFood()));
+        reproduce();
+        applyGrants(resolvePredation());
+        finish(dt);
+    }
+
+    void move(float dt) {
+        // Steering forces are computed from the state at the start of the
+        // step and applied afterwards, so the result does not depend on list
+        // order and matches what a shard sees through its ghosts.
+        Vector2[] forces = new Vector2[amoebas.size()];
+        for (int k = 0; k < amoebas.size(); k++) {
+            Amoeba a = amoebas.get(k);
             Vector2 force = new Vector2(0, 0);
 
             // 1. Foraging (Optimized)
@@ -344,7 +692,7 @@ public class Simulation {
 
             for (Food f : nearbyFood) {
                 float d = a.center.dist(f.pos);
-                if (d < minDist) {
+                if (d < minDist || (d == minDist && nearest != null && f.id < nearest.id)) {
                     minDist = d;
                     nearest = f;
                 }
@@ -353,7 +701,7 @@ public class Simulation {
                 Vector2 dir = nearest.pos.sub(a.center).normalize();
                 force = force.add(dir.mult(a.genes.maxSpeed));
             } else {
-                a.wanderAngle += (rand.nextFloat() - 0.5f) * 1.0f;
+                a.wanderAngle += (a.rng.nextFloat() - 0.5f) * 1.0f;
                 Vector2 wanderDir = new Vector2((float) Math.cos(a.wanderAngle), (float) Math.sin(a.wanderAngle));
                 force = force.add(wanderDir.mult(a.genes.maxSpeed * 0.8f));
             }
@@ -378,11 +726,7 @@ public class Simulation {
 
                 if (d < a.genes.senseRadius * 1.5f) {
                     cohesion = cohesion.add(other.center);
-                    Vector2 otherVel = new Vector2(0, 0);
-                    for (Node n : other.nodes)
-                        otherVel = otherVel.add(n.vel);
-                    otherVel = otherVel.mult(1.0f / other.nodes.size());
-                    alignment = alignment.add(otherVel);
+                    alignment = alignment.add(other.velocity());
                     neighborCount++;
                 }
             }
@@ -396,7 +740,12 @@ public class Simulation {
             force = force.add(separation);
             force = force.add(cohesion);
             force = force.add(alignment);
+            forces[k] = force;
+        }
 
+        for (int k = 0; k < amoebas.size(); k++) {
+            Amoeba a = amoebas.get(k);
+            Vector2 force = forces[k];
             for (Node n : a.nodes) {
                 n.vel = n.vel.add(force.mult(dt));
             }
@@ -410,28 +759,66 @@ public class Simulation {
                     deadAmoebas.add(a);
             }
         }
+    }
 
-        // Interactions (Optimized)
-        List<Food> eatenFood = new ArrayList<>();
-        // We iterate over amoebas and check nearby food
+    // Each amoeba asks for the nearest food in reach (ties by id), whether
+    // it is owned here or a ghost
+    List<Claim> proposeFood() {
+        List<Claim> claims = new ArrayList<>();
         for (Amoeba a : amoebas) {
             List<Food> nearbyFood = grid.getPotentialFoodNeighbors(a.center);
+            Food target = null;
+            float targetDist = a.targetRadius;
             for (Food f : nearbyFood) {
-                if (eatenFood.contains(f))
-                    continue;
-                if (a.center.dist(f.pos) < a.targetRadius) {
-                    eatenFood.add(f);
-                    a.energy += f.value * 2.0f;
-                    a.targetRadius += 1.0f;
-                    for (Spring s : a.springs)
-                        s.restLength *= 1.01f;
-                    break; // One food per frame per amoeba max
+                float d = a.center.dist(f.pos);
+                if (d < targetDist || (d == targetDist && target != null && f.id < target.id)) {
+                    targetDist = d;
+                    target = f;
                 }
             }
+            if (target != null)
+                claims.add(new Claim(target.id, a.id, targetDist));
+        }
+        return claims;
+    }
+
+    // Gives each owned food to its nearest claimant (ties by id) and removes
+    // it. Claims for food that is not owned here are ignored.
+    List<Grant> resolveFood(List<Claim> claims) {
+        Map<Long, Claim> winners = new HashMap<>();
+        for (Claim c : claims) {
+            Claim best = winners.get(c.targetId);
+            if (best == null || c.dist < best.dist || (c.dist == best.dist && c.claimantId < best.claimantId))
+                winners.put(c.targetId, c);
+        }
+        List<Grant> grants = new ArrayList<>();
+        for (Claim c : winners.values()) {
+            Food f = foodById.get(c.targetId);
+            if (f != null) {
+                removeFood(f);
+                grants.add(new Grant(c.claimantId, f.id, f.value * 2.0f, 1.0f, 1.01f));
+            }
+        }
+        return grants;
+    }
+
+    // Grants for amoebas not owned here are dropped. They are applied in
+    // target order so that a predator with several meals sums them the same
+    // way wherever they were decided.
+    void applyGrants(List<Grant> grants) {
+        grants.sort(Comparator.comparingLong(g -> g.targetId));
+        for (Grant g : grants) {
+            Amoeba a = amoebaById.get(g.claimantId);
+            if (a != null) {
+                a.energy += g.energy;
+                a.targetRadius += g.radiusGain;
+                for (Spring s : a.springs)
+                    s.restLength *= g.springScale;
+            }
         }
-        foods.removeAll(eatenFood);
+    }
 
-        // Reproduction
+    void reproduce() {
         for (Amoeba a : amoebas) {
             if (a.targetRadius > 40.0f && a.energy > 80.0f) {
                 newAmoebas.add(a.divide());
@@ -441,33 +828,65 @@ public class Simulation {
                     s.restLength *= 0.7f;
             }
         }
+    }
 
-        // Predation (Optimized)
-        for (Amoeba predator : amoebas) {
-            List<Amoeba> neighbors = grid.getPotentialAmoebaNeighbors(predator.center);
-            for (Amoeba prey : neighbors) {
+    // Each owned amoeba that is not starving is eaten by the largest
+    // neighbour (ties by id) that is 20% bigger and reaches its center. All
+    // meals are judged on the state before any of them, so a predator that
+    // is eaten itself still gets its own meals.
+    List<Grant> resolvePredation() {
+        List<Grant> grants = new ArrayList<>();
+        List<Amoeba> eaten = new ArrayList<>();
+        for (Amoeba prey : amoebas) {
+            if (deadAmoebas.contains(prey))
+                continue;
+            Amoeba winner = null;
+            for (Amoeba predator : grid.getPotentialAmoebaNeighbors(prey.center)) {
                 if (predator == prey)
                     continue;
-                if (deadAmoebas.contains(prey))
-                    continue;
-
                 if (predator.targetRadius > prey.targetRadius * 1.2f &&
                         predator.center.dist(prey.center) < predator.targetRadius) {
-                    predator.energy += prey.energy * 0.8f;
-                    predator.targetRadius += prey.targetRadius * 0.3f;
-                    deadAmoebas.add(prey);
+                    if (winner == null || predator.targetRadius > winner.targetRadius
+                            || (predator.targetRadius == winner.targetRadius && predator.id < winner.id))
+                        winner = predator;
                 }
             }
+            if (winner != null) {
+                grants.add(new Grant(winner.id, prey.id, prey.energy * 0.8f, prey.targetRadius * 0.3f, 1.0f));
+                eaten.add(prey);
+            }
         }
+        deadAmoebas.addAll(eaten);
+        return grants;
+    }
 
-        amoebas.removeAll(deadAmoebas);
-        amoebas.addAll(newAmoebas);
+    void finish(float dt) {
+        if (!deadAmoebas.isEmpty()) {
+            amoebas.removeAll(deadAmoebas);
+            for (Amoeba a : deadAmoebas) {
+                amoebaById.remove(a.id);
+                grid.removeAmoeba(a);
+            }
+            deadAmoebas.clear();
+        }
+        for (Amoeba a : amoebas)
+            grid.moveAmoeba(a);
+        for (Amoeba a : newAmoebas)
+            addAmoeba(a);
+        newAmoebas.clear();
 
         float spawnChance = 0.05f * Math.max(0.1f, temperature / 20.0f);
         // Scale spawn chance by dt to keep rate consistent if dt varies,
         // but here dt is physics step. With timeScale, we want MORE food.
-        if (rand.nextFloat() < spawnChance * (1.0f + dt)) {
-            foods.add(new Food(rand.nextFloat() * width, rand.nextFloat() * height));
+        // The draw depends only on the seed and step, so every shard agrees
+        // on where food appears and only its owner keeps it.
+        Random spawn = new Random(seed ^ (step * GOLDEN) ^ 0x5DEECE66DL);
+        if (spawn.nextFloat() < spawnChance * (1.0f + dt)) {
+            float x = spawn.nextFloat() * width;
+            float y = spawn.nextFloat() * height;
+            if (owns(x, y))
+                addFood(new Food(step, x, y));
         }
+        step++;
     }
 }
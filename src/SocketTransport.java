@@ -0,0 +1,126 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// TCP transport for shards in separate processes. Shard i listens on
+// basePort + i; each sender opens its own connection to the receiver and
+// writes length-prefixed messages over it.
+public class SocketTransport implements Transport {
+    static final long CONNECT_TIMEOUT_MS = 30_000;
+    static final long RECEIVE_TIMEOUT_MS = 30_000;
+
+    private final String host;
+    private final int basePort;
+    private final ServerSocket server;
+    private final BlockingQueue<byte[]> inbox = new LinkedBlockingQueue<>();
+    private final Map<Integer, Socket> outgoing = new HashMap<>();
+    private final Map<Integer, DataOutputStream> outputs = new HashMap<>();
+    private volatile boolean closed;
+    private long bytesSent;
+
+    public SocketTransport(int id, String host, int basePort) throws IOException {
+        this.host = host;
+        this.basePort = basePort;
+        this.server = new ServerSocket(basePort + id, 50, InetAddress.getByName(host));
+
+        Thread acceptor = new Thread(this::acceptLoop, "shard-" + id + "-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                Thread reader = new Thread(() -> readLoop(socket), "shard-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed)
+                    System.err.println("Shard accept failed: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                inbox.add(data);
+            }
+        } catch (IOException e) {
+            // Peer closed its connection
+        }
+    }
+
+    // Peers may still be starting up, so keep retrying for a while
+    private DataOutputStream output(int toShard) throws IOException {
+        DataOutputStream out = outputs.get(toShard);
+        if (out != null)
+            return out;
+
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (true) {
+            try {
+                Socket socket = new Socket(host, basePort + toShard);
+                socket.setTcpNoDelay(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                outgoing.put(toShard, socket);
+                outputs.put(toShard, out);
+                return out;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline)
+                    throw new IOException("Could not connect to shard " + toShard, e);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while connecting to shard " + toShard, ie);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void send(int toShard, ShardMessage message) throws IOException {
+        byte[] data = message.encode();
+        DataOutputStream out = output(toShard);
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+        bytesSent += 4 + data.length;
+    }
+
+    @Override
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public ShardMessage receive() throws IOException, InterruptedException {
+        byte[] data = inbox.poll(RECEIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (data == null)
+            throw new IOException("Timed out waiting for a neighbouring shard");
+        return ShardMessage.decode(data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Socket socket : outgoing.values())
+            socket.close();
+        server.close();
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Carries messages between shards. Messages to the same shard arrive in the
+// order they were sent; receive() returns whatever arrives next from any shard.
+public interface Transport extends Closeable {
+    void send(int toShard, ShardMessage message) throws IOException;
+
+    ShardMessage receive() throws IOException, InterruptedException;
+
+    // Encoded message bytes sent so far, for throughput reports
+    long bytesSent();
+}
+
+// Everything one shard tells a neighbour in one round of a step. Each round
+// uses one or two of the lists; see Shard.step for the order. Most rounds
+// carry a few small records, so messages are written field by field; only
+// migrants, which move with their whole state, are serialized.
+class ShardMessage {
+    int from;
+    long step;
+    int round;
+    List<GhostState> ghosts = new ArrayList<>();
+    List<Food> ghostFoods = new ArrayList<>();
+    List<Long> eatenFoods = new ArrayList<>();
+    List<Claim> claims = new ArrayList<>();
+    List<Grant> grants = new ArrayList<>();
+    List<Amoeba> migrants = new ArrayList<>();
+
+    ShardMessage(int from, long step, int round) {
+        this.from = from;
+        this.step = step;
+        this.round = round;
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(from);
+        out.writeLong(step);
+        out.writeInt(round);
+        out.writeInt(ghosts.size());
+        for (GhostState g : ghosts) {
+            out.writeLong(g.id);
+            out.writeFloat(g.x);
+            out.writeFloat(g.y);
+            out.writeFloat(g.targetRadius);
+            out.writeFloat(g.vx);
+            out.writeFloat(g.vy);
+        }
+        out.writeInt(ghostFoods.size());
+        for (Food f : ghostFoods) {
+            out.writeLong(f.id);
+            out.writeFloat(f.pos.x);
+            out.writeFloat(f.pos.y);
+            out.writeFloat(f.value);
+        }
+        out.writeInt(eatenFoods.size());
+        for (long id : eatenFoods)
+            out.writeLong(id);
+        out.writeInt(claims.size());
+        for (Claim c : claims) {
+            out.writeLong(c.targetId);
+            out.writeLong(c.claimantId);
+            out.writeFloat(c.dist);
+        }
+        out.writeInt(grants.size());
+        for (Grant g : grants) {
+            out.writeLong(g.claimantId);
+            out.writeLong(g.targetId);
+            out.writeFloat(g.energy);
+            out.writeFloat(g.radiusGain);
+            out.writeFloat(g.springScale);
+        }
+        out.writeInt(migrants.size());
+        if (!migrants.isEmpty()) {
+            ByteArrayOutputStream objects = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(objects)) {
+                objectOut.writeObject(new ArrayList<>(migrants));
+            }
+            out.writeInt(objects.size());
+            objects.writeTo(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    static ShardMessage decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        ShardMessage m = new ShardMessage(in.readInt(), in.readLong(), in.readInt());
+        for (int i = in.readInt(); i > 0; i--)
+            m.ghosts.add(new GhostState(in.readLong(), in.readFloat(), in.readFloat(), in.readFloat(),
+                    in.readFloat(), in.readFloat()));
+        for (int i = in.readInt(); i > 0; i--) {
+            Food f = new Food(in.readLong(), in.readFloat(), in.readFloat());
+            f.value = in.readFloat();
+            m.ghostFoods.add(f);
+        }
+        for (int i = in.readInt(); i > 0; i--)
+            m.eatenFoods.add(in.readLong());
+        for (int i = in.readInt(); i > 0; i--)
+            m.claims.add(new Claim(in.readLong(), in.readLong(), in.readFloat()));
+        for (int i = in.readInt(); i > 0; i--)
+            m.grants.add(new Grant(in.readLong(), in.readLong(), in.readFloat(), in.readFloat(), in.readFloat()));
+        if (in.readInt() > 0) {
+            byte[] objects = new byte[in.readInt()];
+            in.readFully(objects);
+            try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(objects))) {
+                m.migrants = (List<Amoeba>) objectIn.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unreadable shard message", e);
+            }
+        }
+        return m;
+    }
+}